@@ -0,0 +1,161 @@
+package io.github.poshjosh.ratelimiter.client;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * An additive-increase/multiplicative-decrease (AIMD) {@link ConcurrencyLimit}.
+ * <p>
+ * Each successful request increases the limit by <code>1/limit</code>, while at least
+ * half the limit is in use. So, when the limit is fully used, it grows by about 1 per
+ * round trip.
+ * </p>
+ * <p>
+ * The limit is multiplied by <code>backoffRatio</code> when it is binding i.e most of
+ * it is in use, and either a request is dropped, or the service is slow. The service is
+ * slow when the short term average round trip time exceeds <code>latencyTolerance</code>
+ * times the long term average. Both are exponentially weighted moving averages, of the
+ * round trip times of successful requests, so single slow responses are smoothed out.
+ * </p>
+ * <p>
+ * Slowness alone does not decrease the limit below its initial value; only dropped
+ * requests do, down to <code>minLimit</code>. The limit is decreased at most once per
+ * round trip: requests which started before the last decrease do not decrease it again.
+ * </p>
+ */
+public class AimdConcurrencyLimit implements ConcurrencyLimit {
+
+    private static final double SHORT_TERM_SMOOTHING = 0.1;
+    private static final double LONG_TERM_SMOOTHING = 0.01;
+    private static final double BINDING_RATIO = 0.8;
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final LongSupplier nanoTime;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+    private double exactLimit;
+    private double shortTermNanos;
+    private double longTermNanos;
+    private long lastDecreaseNanos;
+
+    public AimdConcurrencyLimit() {
+        this(20, 1, 200);
+    }
+
+    public AimdConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, 0.9, 2.0);
+    }
+
+    public AimdConcurrencyLimit(
+            int initialLimit, int minLimit, int maxLimit,
+            double backoffRatio, double latencyTolerance) {
+        this(initialLimit, minLimit, maxLimit, backoffRatio, latencyTolerance, System::nanoTime);
+    }
+
+    AimdConcurrencyLimit(
+            int initialLimit, int minLimit, int maxLimit,
+            double backoffRatio, double latencyTolerance, LongSupplier nanoTime) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException(
+                    "Required: 0 < minLimit <= initialLimit <= maxLimit, found: "
+                            + minLimit + ", " + initialLimit + ", " + maxLimit);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException(
+                    "Required: 0 < backoffRatio < 1, found: " + backoffRatio);
+        }
+        if (latencyTolerance < 1) {
+            throw new IllegalArgumentException(
+                    "Required: latencyTolerance >= 1, found: " + latencyTolerance);
+        }
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.nanoTime = nanoTime;
+        this.limit = initialLimit;
+        this.exactLimit = initialLimit;
+        this.lastDecreaseNanos = Long.MIN_VALUE;
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        while (true) {
+            final int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void release(long roundTripNanos, boolean dropped) {
+        final int inFlightBeforeRelease = inFlight.getAndDecrement();
+        final long now = nanoTime.getAsLong();
+        synchronized (this) {
+            if (!dropped) {
+                updateAverages(roundTripNanos);
+            }
+            final boolean slow = isSlow();
+            if (dropped || slow) {
+                if (inFlightBeforeRelease >= limit * BINDING_RATIO) {
+                    decrease(dropped ? minLimit : initialLimit, now - roundTripNanos, now);
+                }
+            } else if (inFlightBeforeRelease * 2 >= limit) {
+                exactLimit = Math.min(maxLimit, exactLimit + 1 / exactLimit);
+            }
+            limit = (int)exactLimit;
+        }
+    }
+
+    private void decrease(int floor, long requestStartNanos, long now) {
+        // Requests which started before the last decrease, saw the old limit.
+        if (requestStartNanos < lastDecreaseNanos) {
+            return;
+        }
+        // Never raise the limit here, if it is already below the floor.
+        exactLimit = Math.max(Math.min(floor, exactLimit), exactLimit * backoffRatio);
+        lastDecreaseNanos = now;
+    }
+
+    private boolean isSlow() {
+        return shortTermNanos > longTermNanos * latencyTolerance;
+    }
+
+    private void updateAverages(long roundTripNanos) {
+        if (longTermNanos == 0) {
+            shortTermNanos = roundTripNanos;
+            longTermNanos = roundTripNanos;
+            return;
+        }
+        shortTermNanos += (roundTripNanos - shortTermNanos) * SHORT_TERM_SMOOTHING;
+        longTermNanos += (roundTripNanos - longTermNanos) * LONG_TERM_SMOOTHING;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public String toString() {
+        return "AimdConcurrencyLimit{limit=" + limit + ", inFlight=" + getInFlight()
+                + ", min=" + minLimit + ", max=" + maxLimit
+                + ", shortTermMillis=" + shortTermNanos / 1e6
+                + ", longTermMillis=" + longTermNanos / 1e6 + '}';
+    }
+}
@@ -0,0 +1,37 @@
+package io.github.poshjosh.ratelimiter.client;
+
+/**
+ * Limits the number of requests in flight to the rate-limiter-service.
+ * <p>
+ * Each call to {@link #tryAcquire()} which returns true must be followed by
+ * exactly one call to {@link #release(long, boolean)}, once the call is complete.
+ * </p>
+ */
+public interface ConcurrencyLimit {
+
+    ConcurrencyLimit NONE = new ConcurrencyLimit() {
+        @Override public boolean tryAcquire() { return true; }
+        @Override public void release(long roundTripNanos, boolean dropped) { }
+        @Override public int getLimit() { return Integer.MAX_VALUE; }
+        @Override public int getInFlight() { return 0; }
+        @Override public String toString() { return "ConcurrencyLimit.NONE"; }
+    };
+
+    /**
+     * Tries to reserve a slot for a request. Does not block.
+     * @return True if a slot was reserved, false if the limit has been reached.
+     */
+    boolean tryAcquire();
+
+    /**
+     * Releases a slot reserved by {@link #tryAcquire()}.
+     * @param roundTripNanos The round trip time of the completed request, in nanoseconds.
+     * @param dropped True if the request failed in a way that signals overload,
+     *                e.g. a timeout or a 5xx response.
+     */
+    void release(long roundTripNanos, boolean dropped);
+
+    int getLimit();
+
+    int getInFlight();
+}
@@ -0,0 +1,14 @@
+package io.github.poshjosh.ratelimiter.client;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request to the rate-limiter-service was shed, without being sent,
+ * because the client's {@link ConcurrencyLimit} has been reached.
+ */
+public class ConcurrencyLimitExceededException extends IOException {
+
+    public ConcurrencyLimitExceededException(String message) {
+        super(message);
+    }
+}
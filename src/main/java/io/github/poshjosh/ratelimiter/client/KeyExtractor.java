@@ -0,0 +1,62 @@
+package io.github.poshjosh.ratelimiter.client;
+
+import javax.servlet.http.HttpServletRequest;
+import java.security.Principal;
+
+/**
+ * Extracts, from a request, the key under which a rate is applied.
+ * <p>
+ * Each distinct key gets its own limit, based on a single rate template.
+ * For example, given a rate template <code>login</code> of <code>5/m</code>,
+ * {@link #remoteAddress()} limits each remote address to 5 logins per minute.
+ * </p>
+ * @see RateLimiterServiceClient#checkKeyedLimit(HttpServletRequest, String, String, KeyExtractor)
+ */
+@FunctionalInterface
+public interface KeyExtractor {
+
+    /**
+     * @param request The request to extract a key from.
+     * @return The key, or null if the request has no key. Requests without a key
+     *         are not limited, but passed to
+     *         {@link RateLimiterServiceClient#onError(String, Exception, String, HttpServletRequest)}.
+     * @see #orElse(String)
+     */
+    String extract(/* Nullable */ HttpServletRequest request);
+
+    /**
+     * Returns an extractor which uses the provided fallback key, for requests which
+     * have no key. All requests without a key then share a single limit e.g
+     * <code>KeyExtractor.userPrincipal().orElse("anonymous")</code>
+     * @param fallbackKey The key to use, for requests which have no key.
+     * @return An extractor which uses the fallback key, for requests which have no key.
+     */
+    default KeyExtractor orElse(String fallbackKey) {
+        if (fallbackKey == null || fallbackKey.isEmpty()) {
+            throw new IllegalArgumentException("Fallback key must not be null or empty");
+        }
+        return request -> {
+            final String key = extract(request);
+            return key == null || key.isEmpty() ? fallbackKey : key;
+        };
+    }
+
+    static KeyExtractor remoteAddress() {
+        return request -> request == null ? null : request.getRemoteAddr();
+    }
+
+    static KeyExtractor header(String name) {
+        return request -> request == null ? null : request.getHeader(name);
+    }
+
+    static KeyExtractor parameter(String name) {
+        return request -> request == null ? null : request.getParameter(name);
+    }
+
+    static KeyExtractor userPrincipal() {
+        return request -> {
+            final Principal principal = request == null ? null : request.getUserPrincipal();
+            return principal == null ? null : principal.getName();
+        };
+    }
+}
@@ -0,0 +1,17 @@
+package io.github.poshjosh.ratelimiter.client;
+
+/**
+ * Passed to {@link RateLimiterServiceClient#onError(String, Exception, String,
+ * javax.servlet.http.HttpServletRequest)}, when a {@link KeyExtractor} extracts no key
+ * from a request.
+ * <p>
+ * Requests without a key are ordinary traffic e.g anonymous requests, so this
+ * exception does not fill in its stack trace.
+ * </p>
+ */
+public class MissingKeyException extends Exception {
+
+    public MissingKeyException(String message) {
+        super(message, null, false, false);
+    }
+}
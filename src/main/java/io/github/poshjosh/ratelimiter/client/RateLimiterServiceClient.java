@@ -12,6 +12,7 @@ import okio.BufferedSink;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
@@ -33,6 +34,7 @@ public class RateLimiterServiceClient {
     private final OkHttpClient httpClient;
     private final ObjectMapper objectMapper;
     private final Set<String> postedRateIds;
+    private final ConcurrencyLimit concurrencyLimit;
 
     public RateLimiterServiceClient(String serverBaseUrl) {
         this(serverBaseUrl, StandardCharsets.ISO_8859_1,
@@ -53,11 +55,20 @@ public class RateLimiterServiceClient {
             String serverBaseUrl, Charset charset,
             OkHttpClient httpClient, ObjectMapper objectMapper,
             Set<String> postedRateIds) {
+        this(serverBaseUrl, charset, httpClient, objectMapper, postedRateIds,
+                new AimdConcurrencyLimit());
+    }
+
+    protected RateLimiterServiceClient(
+            String serverBaseUrl, Charset charset,
+            OkHttpClient httpClient, ObjectMapper objectMapper,
+            Set<String> postedRateIds, ConcurrencyLimit concurrencyLimit) {
         this.serverBaseUrl = Objects.requireNonNull(serverBaseUrl);
         this.charset = Objects.requireNonNull(charset);
         this.httpClient = Objects.requireNonNull(httpClient);
         this.objectMapper = Objects.requireNonNull(objectMapper);
         this.postedRateIds = Objects.requireNonNull(postedRateIds);
+        this.concurrencyLimit = Objects.requireNonNull(concurrencyLimit);
     }
 
     public RateLimiterServiceClient withTimeout(long timeout, TimeUnit timeUnit) {
@@ -66,7 +77,27 @@ public class RateLimiterServiceClient {
                 .readTimeout(timeout, timeUnit)
                 .build();
         return new RateLimiterServiceClient(
-                serverBaseUrl, charset, newHttpClient, objectMapper, postedRateIds);
+                serverBaseUrl, charset, newHttpClient, objectMapper, postedRateIds,
+                concurrencyLimit);
+    }
+
+    /**
+     * Returns a client which limits the number of requests in flight to the
+     * rate-limiter-service, using the provided {@link ConcurrencyLimit}.
+     * <p>
+     * Requests above the limit are not sent. Instead, a
+     * {@link ConcurrencyLimitExceededException} is thrown, which the convenience
+     * methods e.g {@link #checkLimit(HttpServletRequest, String, String)} pass
+     * to {@link #onError(String, Exception, String, HttpServletRequest)}.
+     * By default, an {@link AimdConcurrencyLimit} is used.
+     * </p>
+     * @param concurrencyLimit The limit to use, or {@link ConcurrencyLimit#NONE} for no limit.
+     * @return A new client, which uses the provided concurrency limit.
+     */
+    public RateLimiterServiceClient withConcurrencyLimit(ConcurrencyLimit concurrencyLimit) {
+        return new RateLimiterServiceClient(
+                serverBaseUrl, charset, httpClient, objectMapper, postedRateIds,
+                concurrencyLimit);
     }
 
     public boolean checkLimit(HttpServletRequest request, String id, String rate) {
@@ -80,6 +111,62 @@ public class RateLimiterServiceClient {
 
     public boolean checkLimit(
             HttpServletRequest request, String parentId, String id, String rate, String condition) {
+        return checkLimit(request, parentId, id, rate, condition, null);
+    }
+
+    public boolean checkKeyedLimit(
+            HttpServletRequest request, String id, String rate, KeyExtractor keyExtractor) {
+        return checkKeyedLimit(request, null, id, rate, null, keyExtractor);
+    }
+
+    public boolean checkKeyedLimit(
+            HttpServletRequest request, String id, String rate, String condition,
+            KeyExtractor keyExtractor) {
+        return checkKeyedLimit(request, null, id, rate, condition, keyExtractor);
+    }
+
+    /**
+     * Checks a limit which is applied separately for each key extracted from the request.
+     * <p>
+     * The rate is a template, posted to the remote service once, under the provided id.
+     * The key is sent along with each acquire call, and the remote service applies the
+     * rate separately for each key. Neither a round trip, nor any client state, is
+     * required for each new key.
+     * </p>
+     * Example, limiting each remote address to 5 logins per minute:
+     * <pre>
+     *     client.checkKeyedLimit(request, "login", "5/m", KeyExtractor.remoteAddress());
+     * </pre>
+     * <p>
+     * If no key could be extracted from the request, i.e the key is null or empty, no permit
+     * is acquired. Instead, the result of {@link #onError(String, Exception, String,
+     * HttpServletRequest)}, called with a {@link MissingKeyException}, is returned, which
+     * by default allows the request. To limit such
+     * requests, use {@link KeyExtractor#orElse(String)} to choose a fallback key.
+     * </p>
+     * @param request The HttpServletRequest to acquire a permit for.
+     * @param parentId The id of the parent rate, if any.
+     * @param id The id of the rate template.
+     * @param rate The rate to apply for each key e.g '5/m'
+     * @param condition The condition under which the rate applies, if any.
+     * @param keyExtractor Extracts the key from the request.
+     * @return True if a permit was acquired for the extracted key, false otherwise.
+     * @see KeyExtractor
+     */
+    public boolean checkKeyedLimit(
+            HttpServletRequest request, String parentId, String id, String rate, String condition,
+            KeyExtractor keyExtractor) {
+        final String key = keyExtractor.extract(request);
+        if (key == null || key.isEmpty()) {
+            return onError("Extract key", new MissingKeyException("No key for rate: " + id),
+                    id, request);
+        }
+        return checkLimit(request, parentId, id, rate, condition, key);
+    }
+
+    private boolean checkLimit(
+            HttpServletRequest request, String parentId, String id, String rate, String condition,
+            /* Nullable */ String key) {
         if (!postedRateIds.contains(id)) {
             try {
                 this.postRate(parentId, id, rate, condition);
@@ -87,7 +174,7 @@ public class RateLimiterServiceClient {
                 return onError("Post rate", e, id, request);
             }
         }
-        return this.tryToAcquirePermitQuietly(id, request);
+        return this.tryToAcquirePermitQuietly(id, key, request);
     }
 
     public RatesDto getRates(String id) throws IOException, ServerException {
@@ -225,8 +312,21 @@ public class RateLimiterServiceClient {
      */
     public boolean tryToAcquirePermitQuietly(
             String rateId, /* Nullable */ HttpServletRequest request) {
+        return tryToAcquirePermitQuietly(rateId, null, request);
+    }
+
+    /**
+     * Try to acquire a single permit, for the provided key. (A convenience method)
+     * @param rateId The id of the rate to acquire permits from.
+     * @param key The key to acquire permits for, or null to acquire without a key.
+     * @param request The HttpServletRequest to acquire permits for.
+     * @return True if permits are acquired, false otherwise.
+     * @see #tryToAcquirePermits(String, String, int, boolean, HttpRequestDto)
+     */
+    public boolean tryToAcquirePermitQuietly(
+            String rateId, /* Nullable */ String key, /* Nullable */ HttpServletRequest request) {
         try {
-            return tryToAcquirePermits(rateId, 1, false, request);
+            return tryToAcquirePermits(rateId, key, 1, false, request);
         } catch (IOException | ServerException e) {
             return onError("Acquire permit", e, rateId, request);
         }
@@ -235,8 +335,12 @@ public class RateLimiterServiceClient {
     protected boolean onError(
             String action, Exception exception,
             String rateId, /* Nullable */ HttpServletRequest request) {
-        if (LOGGER.isLoggable(Level.WARNING)) {
-            LOGGER.warning(action + " error. Rate: "+rateId+" for: "+request+". "+exception);
+        // Shed requests are expected under overload, and requests without a key are ordinary
+        // traffic e.g anonymous requests. Logging each as a warning would flood the log.
+        final Level level = exception instanceof ConcurrencyLimitExceededException
+                || exception instanceof MissingKeyException ? Level.FINE : Level.WARNING;
+        if (LOGGER.isLoggable(level)) {
+            LOGGER.log(level, action + " error. Rate: "+rateId+" for: "+request+". "+exception);
         }
         return true;
     }
@@ -258,6 +362,25 @@ public class RateLimiterServiceClient {
         return tryToAcquirePermits(rateId, permits, async, HttpRequestDtos.of(request));
     }
 
+    /**
+     * Try to acquire the specified number of permits, for the provided key.
+     * @param rateId The id of the rate to acquire permits from.
+     * @param key The key to acquire permits for, or null to acquire without a key.
+     * @param permits The number of permits to acquire.
+     * @param async Whether to acquire the permits asynchronously on the server.
+     * @param request The HttpServletRequest to acquire permits for.
+     * @return True if permits are available, false otherwise.
+     * @throws IOException If there was an error communicating with the server.
+     * @throws ServerException If the server returned an error response.
+     * @see #tryToAcquirePermits(String, String, int, boolean, HttpRequestDto)
+     */
+    public boolean tryToAcquirePermits(
+            String rateId, /* Nullable */ String key, int permits, boolean async,
+            /* Nullable */ HttpServletRequest request)
+            throws IOException, ServerException {
+        return tryToAcquirePermits(rateId, key, permits, async, HttpRequestDtos.of(request));
+    }
+
     /**
      * Try to acquire the specified number of permits.
      * <p>
@@ -277,8 +400,32 @@ public class RateLimiterServiceClient {
     protected boolean tryToAcquirePermits(
             String rateId, int permits, boolean async, /* Nullable */ HttpRequestDto requestDto)
             throws IOException, ServerException {
+        return tryToAcquirePermits(rateId, null, permits, async, requestDto);
+    }
+
+    /**
+     * Try to acquire the specified number of permits, for the provided key.
+     * <p>
+     * The rate identified by rateId is used as a template, which the server
+     * applies separately for each key.
+     * </p>
+     * @param rateId The id of the rate to acquire permits from.
+     * @param key The key to acquire permits for, or null to acquire without a key.
+     * @param permits The number of permits to acquire.
+     * @param async Whether to acquire the permits asynchronously on the server.
+     * @param requestDto An object encapsulating request data, to acquire permits for.
+     * @return True if permits are available, false otherwise.
+     * @throws IOException If there was an error communicating with the server.
+     * @throws ServerException If the server returned an error response.
+     * @see #tryToAcquirePermits(String, int, boolean, HttpRequestDto)
+     */
+    protected boolean tryToAcquirePermits(
+            String rateId, /* Nullable */ String key, int permits, boolean async,
+            /* Nullable */ HttpRequestDto requestDto)
+            throws IOException, ServerException {
         final String path = String.format(
-                "/permits/acquire?rateId=%s&permits=%d&async=%s", rateId, permits, async);
+                "/permits/acquire?rateId=%s&permits=%d&async=%s", rateId, permits, async)
+                + (key == null ? "" : "&key=" + URLEncoder.encode(key, StandardCharsets.UTF_8.name()));
         final Request request = request(path).patch(requestBody(requestDto)).build();
         final String responseBodyStr = sendForStringResponse(request, false);
         return Boolean.parseBoolean(responseBodyStr);
@@ -299,11 +446,12 @@ public class RateLimiterServiceClient {
     }
 
     private void sendForNoResponseBody(Request request) throws IOException, ServerException {
-        try(Response response = httpClient.newCall(request).execute()) {
+        send(request, response -> {
             if (!response.isSuccessful()) {
                 complain(response);
             }
-        }
+            return null;
+        });
     }
 
     private String sendForStringResponse(Request request) throws IOException, ServerException {
@@ -312,7 +460,7 @@ public class RateLimiterServiceClient {
 
     private String sendForStringResponse(Request request, boolean failOnError)
             throws IOException, ServerException {
-        try(Response response = httpClient.newCall(request).execute()) {
+        return send(request, response -> {
             if (failOnError && !response.isSuccessful()) {
                 complain(response);
             }
@@ -321,6 +469,34 @@ public class RateLimiterServiceClient {
                 complain(response);
             }
             return responseBodyStr;
+        });
+    }
+
+    private interface ResponseHandler<T> {
+        T handle(Response response) throws IOException, ServerException;
+    }
+
+    private <T> T send(Request request, ResponseHandler<T> responseHandler)
+            throws IOException, ServerException {
+        if (!concurrencyLimit.tryAcquire()) {
+            throw new ConcurrencyLimitExceededException(
+                    "Concurrency limit reached: " + concurrencyLimit.getLimit());
+        }
+        final long startTime = System.nanoTime();
+        // An IOException, e.g a timeout or while reading the response body, counts as dropped.
+        boolean dropped = true;
+        try(Response response = httpClient.newCall(request).execute()) {
+            final boolean serverError = response.code() >= 500;
+            try {
+                final T result = responseHandler.handle(response);
+                dropped = serverError;
+                return result;
+            } catch (ServerException e) {
+                dropped = serverError;
+                throw e;
+            }
+        } finally {
+            concurrencyLimit.release(System.nanoTime() - startTime, dropped);
         }
     }
 
@@ -0,0 +1,173 @@
+package io.github.poshjosh.ratelimiter.client;
+
+import java.time.LocalTime;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Deterministic checks of {@link AimdConcurrencyLimit}, on a simulated clock.
+ * <p>
+ * Requests arrive open-loop, at a fixed rate, and complete after a round trip time
+ * chosen per request. Requests which arrive when the limit is reached are shed.
+ * Fails with an {@link IllegalStateException} if too many requests are shed, or if the
+ * limit falls below its initial value or does not recover.
+ * </p>
+ */
+public class AimdConcurrencyLimitCheck {
+    private static final int INITIAL_LIMIT = 20;
+
+    public static void main(String... args) {
+        jitteredLatency();
+        lightTrafficThenBurst();
+        latencyStep();
+        slowBurst();
+    }
+
+    private static void jitteredLatency() {
+        final Simulation simulation = new Simulation();
+        final Random random = new Random(1);
+
+        // About 22 requests in flight.
+        final Phase phase = simulation.run(2000, 5, () -> millis(2, 20, random));
+        log("Jittered 2-20 ms at 2000/s: " + phase + ", " + simulation.limit);
+        check(phase.shedRatio() < 0.01, "too many shed, with jittered latency: " + phase);
+        check(phase.lowest >= INITIAL_LIMIT, "limit decreased, with jittered latency: " + phase);
+    }
+
+    private static void lightTrafficThenBurst() {
+        final Simulation simulation = new Simulation();
+        final Random random = new Random(2);
+
+        final Phase light = simulation.run(100, 5, () -> millis(2, 10, random));
+        log("Light 2-10 ms at 100/s:     " + light + ", " + simulation.limit);
+        check(simulation.limit.getLimit() >= INITIAL_LIMIT,
+                "limit drifted down, under light traffic: " + simulation.limit);
+
+        // About 15 requests in flight, within the initial limit, which must not have drifted down.
+        final Phase burst = simulation.run(2500, 1, () -> millis(2, 10, random));
+        log("Burst 2-10 ms at 2500/s:    " + burst + ", " + simulation.limit);
+        check(burst.shedRatio() < 0.01, "too many shed, in burst after light traffic: " + burst);
+    }
+
+    private static void latencyStep() {
+        final Simulation simulation = new Simulation();
+        final Random random = new Random(3);
+
+        simulation.run(10_000, 2, () -> millis(2, 2, random));
+        log("Steady 2 ms at 10000/s:     " + simulation.limit);
+
+        // About 50 requests in flight.
+        final Phase step = simulation.run(10_000, 10, () -> millis(5, 5, random));
+        log("Step to 5 ms at 10000/s:    " + step + ", " + simulation.limit);
+        check(step.lowest >= INITIAL_LIMIT, "limit fell below initial, after step: " + step);
+        check(step.shedRatio() < 0.01, "too many shed, after latency step: " + step);
+        check(simulation.limit.getLimit() >= 50,
+                "limit did not recover, after latency step: " + simulation.limit);
+    }
+
+    private static void slowBurst() {
+        final AtomicLong clock = new AtomicLong();
+        final AimdConcurrencyLimit limit = new AimdConcurrencyLimit(
+                INITIAL_LIMIT, 1, 200, 0.9, 2.0, clock::get);
+        final int demand = 200;
+
+        rounds(limit, clock, demand, millis(2), 500);
+        final int before = limit.getLimit();
+        log("Rounds of " + demand + " at 2 ms:       " + limit);
+        check(before == demand, "limit did not grow to demand: " + limit);
+
+        // A single round of 200 concurrent slow responses.
+        rounds(limit, clock, demand, millis(50), 1);
+        log("After burst of " + demand + " slow:    " + limit);
+        check(limit.getLimit() >= (int)(before * 0.9),
+                "burst decreased the limit more than once: " + limit);
+
+        rounds(limit, clock, demand, millis(2), 100);
+        log("After burst, recovered:    " + limit);
+        check(limit.getLimit() == before, "limit did not recover after burst: " + limit);
+    }
+
+    /**
+     * Each round, up to <code>demand</code> requests start together, and all complete
+     * after the same round trip time.
+     */
+    private static void rounds(
+            ConcurrencyLimit limit, AtomicLong clock, int demand, long roundTripNanos, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            int acquired = 0;
+            while (acquired < demand && limit.tryAcquire()) {
+                ++acquired;
+            }
+            clock.addAndGet(roundTripNanos);
+            for (int i = 0; i < acquired; i++) {
+                limit.release(roundTripNanos, false);
+            }
+        }
+    }
+
+    private static final class Simulation {
+        private final AtomicLong clock = new AtomicLong();
+        private final AimdConcurrencyLimit limit = new AimdConcurrencyLimit(
+                INITIAL_LIMIT, 1, 200, 0.9, 2.0, clock::get);
+        // Pairs of {end time, round trip time}, ordered by end time.
+        private final PriorityQueue<long[]> inFlight =
+                new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+
+        private Phase run(int rps, int seconds, LongSupplier roundTripNanos) {
+            final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rps;
+            final Phase phase = new Phase();
+            long arrival = clock.get();
+            for (int i = 0; i < rps * seconds; i++, arrival += intervalNanos) {
+                while (!inFlight.isEmpty() && inFlight.peek()[0] <= arrival) {
+                    final long[] completed = inFlight.poll();
+                    clock.set(completed[0]);
+                    limit.release(completed[1], false);
+                }
+                clock.set(arrival);
+                phase.lowest = Math.min(phase.lowest, limit.getLimit());
+                ++phase.total;
+                if (limit.tryAcquire()) {
+                    final long roundTrip = roundTripNanos.getAsLong();
+                    inFlight.add(new long[]{arrival + roundTrip, roundTrip});
+                } else {
+                    ++phase.shed;
+                }
+            }
+            return phase;
+        }
+    }
+
+    private static final class Phase {
+        private int total;
+        private int shed;
+        private int lowest = Integer.MAX_VALUE;
+        private double shedRatio() {
+            return (double)shed / total;
+        }
+        @Override
+        public String toString() {
+            return "shed " + shed + " of " + total + ", lowest limit: " + lowest;
+        }
+    }
+
+    private static long millis(long min, long max, Random random) {
+        return millis(min) + (long)(random.nextDouble() * millis(max - min));
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private static void log(String message) {
+        System.out.println(LocalTime.now() + " " + message);
+    }
+}
@@ -0,0 +1,239 @@
+package io.github.poshjosh.ratelimiter.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-process stand-in for the rate-limiter-service, for use in offline checks.
+ * <p>
+ * Serves the <code>/rates</code> and <code>/permits</code> endpoints used by
+ * {@link RateLimiterServiceClient}. Rates are stored but not enforced; instead,
+ * each permit request is denied with probability <code>denialRate</code>, and fails
+ * with an empty 500 response with probability <code>errorRate</code>. Every
+ * response is delayed by <code>latencyMillis</code>, plus up to
+ * <code>jitterMillis</code> of random extra delay.
+ * </p>
+ * <p>
+ * The <code>key</code>, if any, of each acquire request is recorded per rate.
+ * See {@link #hasKey(String, String)}.
+ * </p>
+ */
+public class FakeRateLimiterService implements AutoCloseable {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, String> rates = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> keys = new ConcurrentHashMap<>();
+
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double denialRate;
+    private final double errorRate;
+    private final int threads;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public FakeRateLimiterService(
+            long latencyMillis, long jitterMillis, double denialRate, double errorRate, int threads) {
+        if (latencyMillis < 0 || jitterMillis < 0) {
+            throw new IllegalArgumentException("Latency must be >= 0");
+        }
+        if (denialRate < 0 || denialRate > 1 || errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("Denial and error rates must be between 0 and 1");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be > 0");
+        }
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.denialRate = denialRate;
+        this.errorRate = errorRate;
+        this.threads = threads;
+    }
+
+    /**
+     * Starts the service on an ephemeral port of the loopback address.
+     * @return The base url of the started service e.g <code>http://127.0.0.1:54321</code>
+     */
+    public synchronized String start() throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Already started");
+        }
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/rates", exchange -> handle(exchange, this::handleRates));
+        server.createContext("/permits", exchange -> handle(exchange, this::handlePermits));
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return True if an acquire request, with the provided key, was received for the rate.
+     */
+    public boolean hasKey(String rateId, String key) {
+        final Set<String> rateKeys = keys.get(rateId);
+        return rateKeys != null && rateKeys.contains(key);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+        executor = null;
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange, String body) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try {
+            final String body = readBody(exchange);
+            delay();
+            handler.handle(exchange, body);
+        } catch (IOException e) {
+            // e.g a malformed request body
+            respond(exchange, 400, e.toString());
+        } catch (RuntimeException e) {
+            respond(exchange, 500, e.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleRates(HttpExchange exchange, String body) throws IOException {
+        final String method = exchange.getRequestMethod();
+        final String path = exchange.getRequestURI().getPath();
+        if ("POST".equals(method) && "/rates".equals(path)) {
+            final JsonNode id = objectMapper.readTree(body).get("id");
+            if (id == null || id.asText().isEmpty()) {
+                respond(exchange, 400, "RatesDto#id is required");
+                return;
+            }
+            rates.put(id.asText(), body);
+            respond(exchange, 201, body);
+            return;
+        }
+        final String id = path.startsWith("/rates/") ? path.substring("/rates/".length()) : "";
+        if ("GET".equals(method) && !id.isEmpty()) {
+            final String rate = rates.get(id);
+            if (rate == null) {
+                respond(exchange, 404, "Not found: " + id);
+            } else {
+                respond(exchange, 200, rate);
+            }
+        } else if ("DELETE".equals(method) && !id.isEmpty()) {
+            rates.remove(id);
+            keys.remove(id);
+            respond(exchange, 204, null);
+        } else {
+            respond(exchange, 405, "Not supported: " + method + ' ' + path);
+        }
+    }
+
+    private void handlePermits(HttpExchange exchange, String body) throws IOException {
+        final String path = exchange.getRequestURI().getPath();
+        if (!"PATCH".equals(exchange.getRequestMethod())
+                || !("/permits/acquire".equals(path) || "/permits/available".equals(path))) {
+            respond(exchange, 405, "Not supported: " + exchange.getRequestMethod() + ' ' + path);
+            return;
+        }
+        final String rateId = queryParam(exchange.getRequestURI(), "rateId");
+        if (rateId == null || !rates.containsKey(rateId)) {
+            respond(exchange, 404, "Not found: " + rateId);
+            return;
+        }
+        final String key = queryParam(exchange.getRequestURI(), "key");
+        if (key != null) {
+            if (key.isEmpty()) {
+                respond(exchange, 400, "Key must not be empty");
+                return;
+            }
+            if ("/permits/acquire".equals(path)) {
+                keys.computeIfAbsent(rateId, k -> ConcurrentHashMap.newKeySet())
+                        .add(URLDecoder.decode(key, StandardCharsets.UTF_8.name()));
+            }
+        }
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            respond(exchange, 500, null);
+            return;
+        }
+        final boolean permitted = denialRate == 0 || random.nextDouble() >= denialRate;
+        respond(exchange, 200, Boolean.toString(permitted));
+    }
+
+    private void delay() {
+        final long jitter = jitterMillis == 0 ? 0 : ThreadLocalRandom.current().nextLong(jitterMillis + 1);
+        final long delay = latencyMillis + jitter;
+        if (delay == 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String queryParam(URI uri, String name) {
+        final String query = uri.getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            final int i = pair.indexOf('=');
+            if (i > 0 && name.equals(pair.substring(0, i))) {
+                return pair.substring(i + 1);
+            }
+        }
+        return null;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        if (body == null || body.isEmpty()) {
+            exchange.sendResponseHeaders(code, -1);
+            return;
+        }
+        final byte[] bytes = body.getBytes(StandardCharsets.ISO_8859_1);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
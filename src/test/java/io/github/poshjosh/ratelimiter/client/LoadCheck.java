@@ -0,0 +1,233 @@
+package io.github.poshjosh.ratelimiter.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives {@link RateLimiterServiceClient} against an in-process {@link FakeRateLimiterService}.
+ * <p>
+ * Requests are issued open-loop: each request has an intended start time on a fixed
+ * schedule of <code>load.rps</code> requests per second, independent of how long earlier
+ * requests took. Latency is measured from the intended start time, so time spent queued
+ * behind slow requests is counted (i.e. corrected for coordinated omission). The
+ * uncorrected latency, measured from the actual start time, is reported alongside.
+ * </p>
+ * Configure via system properties, e.g:
+ * <pre>
+ *     -Dload.rps=2000 -Dload.seconds=20 -Dload.threads=64 -Dload.keys=10
+ *     -Dservice.latencyMillis=5 -Dservice.jitterMillis=20
+ *     -Dservice.denialRate=0.1 -Dservice.errorRate=0.01 -Dservice.threads=64
+ *     -Dclient.timeoutMillis=1000 -Dclient.concurrencyLimit=false
+ * </pre>
+ */
+public class LoadCheck {
+
+    public static void main(String... args) throws Exception {
+        final int rps = Integer.getInteger("load.rps", 500);
+        final int seconds = Integer.getInteger("load.seconds", 10);
+        final int threads = Integer.getInteger("load.threads", 32);
+        final int keys = Integer.getInteger("load.keys", 1);
+        final long timeoutMillis = Long.getLong("client.timeoutMillis", 15_000L);
+        final ConcurrencyLimit concurrencyLimit = Boolean.parseBoolean(
+                System.getProperty("client.concurrencyLimit", "true")) ?
+                new AimdConcurrencyLimit() : ConcurrencyLimit.NONE;
+
+        try (FakeRateLimiterService service = new FakeRateLimiterService(
+                Long.getLong("service.latencyMillis", 2L),
+                Long.getLong("service.jitterMillis", 3L),
+                Double.parseDouble(System.getProperty("service.denialRate", "0.1")),
+                Double.parseDouble(System.getProperty("service.errorRate", "0")),
+                Integer.getInteger("service.threads", 64))) {
+
+            final CountingClient client = new CountingClient(
+                    service.start(), timeoutMillis, threads, concurrencyLimit);
+            final String[] rateIds = new String[keys];
+            for (int i = 0; i < keys; i++) {
+                rateIds[i] = LoadCheck.class.getSimpleName() + '-' + i;
+                // Warm up: the first checkLimit for each id posts its rate.
+                client.checkLimit(null, rateIds[i], "1000/s");
+            }
+
+            log(String.format("Target: %d rps for %ds on %d threads, keys: %d",
+                    rps, seconds, threads, keys));
+
+            final Result checkLimit = run(rps, seconds, threads, i -> {
+                client.lastError.remove();
+                final boolean permitted = client.checkLimit(null, rateIds[i % keys], "1000/s");
+                // onError fails open, so we check for errors to tell them apart from permits.
+                return client.lastError.get() != null ? Outcome.ERROR :
+                        permitted ? Outcome.PERMITTED : Outcome.DENIED;
+            });
+            log("checkLimit          " + checkLimit);
+            log(concurrencyLimit.toString());
+
+            final Result acquire = run(rps, seconds, threads, i -> {
+                try {
+                    return client.tryToAcquirePermits(
+                            rateIds[i % keys], 1, false, (HttpServletRequest)null) ?
+                            Outcome.PERMITTED : Outcome.DENIED;
+                } catch (Exception e) {
+                    return Outcome.ERROR;
+                }
+            });
+            log("tryToAcquirePermits " + acquire);
+            log(concurrencyLimit.toString());
+
+            // A distinct key per call: one rate template, no per-key registration.
+            // The keys contain characters which must be URL encoded.
+            final AtomicInteger missingKeys = new AtomicInteger();
+            final Result keyed = run(rps, seconds, threads, i -> {
+                client.lastError.remove();
+                final String key = "user " + i + "/&=?\u00e9";
+                final boolean permitted = client.checkKeyedLimit(
+                        null, rateIds[0], "1000/s", request -> key);
+                if (client.lastError.get() != null) {
+                    return Outcome.ERROR;
+                }
+                if (!service.hasKey(rateIds[0], key)) {
+                    missingKeys.incrementAndGet();
+                }
+                return permitted ? Outcome.PERMITTED : Outcome.DENIED;
+            });
+            log("checkKeyedLimit     " + keyed);
+            log(concurrencyLimit.toString());
+            if (missingKeys.get() > 0) {
+                throw new IllegalStateException(
+                        "Keys not received by the service, for " + missingKeys + " calls");
+            }
+
+            for (String rateId : rateIds) {
+                client.deleteRates(rateId);
+            }
+        }
+    }
+
+    private enum Outcome { PERMITTED, DENIED, ERROR }
+
+    private interface Call {
+        Outcome call(int index);
+    }
+
+    private static class CountingClient extends RateLimiterServiceClient {
+        private final ThreadLocal<Exception> lastError = new ThreadLocal<>();
+        private CountingClient(String serverBaseUrl, long timeoutMillis, int threads,
+                ConcurrencyLimit concurrencyLimit) {
+            super(serverBaseUrl, StandardCharsets.ISO_8859_1,
+                    new OkHttpClient.Builder()
+                            .connectTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                            .readTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                            .connectionPool(new ConnectionPool(threads, 5, TimeUnit.MINUTES))
+                            .build(),
+                    new ObjectMapper().findAndRegisterModules(), ConcurrentHashMap.newKeySet(),
+                    concurrencyLimit);
+        }
+        @Override
+        protected boolean onError(
+                String action, Exception exception, String rateId, HttpServletRequest request) {
+            lastError.set(exception);
+            return true;
+        }
+    }
+
+    private static Result run(int rps, int seconds, int threads, Call call)
+            throws InterruptedException {
+        final int total = rps * seconds;
+        final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rps;
+        final long[] corrected = new long[total];
+        final long[] uncorrected = new long[total];
+        final AtomicInteger[] outcomes = {
+                new AtomicInteger(), new AtomicInteger(), new AtomicInteger() };
+        final AtomicLong lastEnd = new AtomicLong();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final long start = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            final long intendedStart = start + i * intervalNanos;
+            long wait;
+            while ((wait = intendedStart - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            final int index = i;
+            executor.execute(() -> {
+                final long actualStart = System.nanoTime();
+                Outcome outcome;
+                try {
+                    outcome = call.call(index);
+                } catch (RuntimeException e) {
+                    outcome = Outcome.ERROR;
+                }
+                final long end = System.nanoTime();
+                corrected[index] = end - intendedStart;
+                uncorrected[index] = end - actualStart;
+                outcomes[outcome.ordinal()].incrementAndGet();
+                lastEnd.accumulateAndGet(end, Math::max);
+            });
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.MINUTES)) {
+            executor.shutdownNow();
+            throw new IllegalStateException("Timed out waiting for requests to complete");
+        }
+        return new Result(total, lastEnd.get() - start, corrected, uncorrected,
+                outcomes[0].get(), outcomes[1].get(), outcomes[2].get());
+    }
+
+    private static final class Result {
+        private final int total;
+        private final long elapsedNanos;
+        private final long[] corrected;
+        private final long[] uncorrected;
+        private final int permitted;
+        private final int denied;
+        private final int errors;
+        private Result(int total, long elapsedNanos, long[] corrected, long[] uncorrected,
+                int permitted, int denied, int errors) {
+            this.total = total;
+            this.elapsedNanos = elapsedNanos;
+            this.corrected = corrected;
+            this.uncorrected = uncorrected;
+            this.permitted = permitted;
+            this.denied = denied;
+            this.errors = errors;
+            Arrays.sort(this.corrected);
+            Arrays.sort(this.uncorrected);
+        }
+        @Override
+        public String toString() {
+            final double elapsedSeconds = elapsedNanos / 1e9;
+            // Goodput excludes errors, which include calls shed by the client's ConcurrencyLimit.
+            return String.format("throughput: %.1f/s, goodput: %.1f/s, permitted: %d, denied: %d,"
+                            + " errors: %d (%.2f%%)"
+                            + "%n    corrected   latency ms %s%n    uncorrected latency ms %s",
+                    total / elapsedSeconds, (permitted + denied) / elapsedSeconds,
+                    permitted, denied, errors, 100.0 * errors / total,
+                    percentiles(corrected), percentiles(uncorrected));
+        }
+        private static String percentiles(long[] sorted) {
+            return String.format("p50: %.2f, p90: %.2f, p99: %.2f, p99.9: %.2f, max: %.2f",
+                    millis(sorted, 0.5), millis(sorted, 0.9), millis(sorted, 0.99),
+                    millis(sorted, 0.999), millis(sorted, 1));
+        }
+        private static double millis(long[] sorted, double percentile) {
+            final int index = (int)Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+
+    private static void log(String message) {
+        System.out.println(LocalTime.now() + " " + message);
+    }
+}